@@ -0,0 +1,116 @@
+package com.italankin.slidinglayout;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Delivers drag progress to a {@link SlidingLayout.OnDragProgressListener} on the given
+ * {@link Executor}. Only the latest progress value is kept pending, so a slow listener never
+ * builds a queue of tasks. Settled values ({@code 0} and {@code 1}) are not dropped: if such value
+ * is replaced before it was delivered, it is delivered right before the latest one. Since there
+ * are only two settled values, keeping the last two distinct ones is enough to not lose any
+ * settle. If the executor rejects the task, the value is dropped.
+ */
+class ConflatedProgressDispatcher implements Runnable {
+
+    final SlidingLayout.OnDragProgressListener listener;
+    private final Executor mExecutor;
+
+    private float mPending;
+    private boolean mHasPending = false;
+    /**
+     * Replaced settled values in order of their dispatch
+     */
+    private final float[] mPendingSettled = new float[2];
+    private int mPendingSettledCount = 0;
+    private volatile boolean mRemoved = false;
+
+    ConflatedProgressDispatcher(SlidingLayout.OnDragProgressListener listener, Executor executor) {
+        this.listener = listener;
+        mExecutor = executor;
+    }
+
+    /**
+     * Called on the main thread to publish new progress value.
+     *
+     * @param percent progress value
+     */
+    void dispatch(float percent) {
+        boolean schedule;
+        synchronized (this) {
+            if (mHasPending && isSettled(mPending) && mPending != percent) {
+                addPendingSettled(mPending);
+            }
+            mPending = percent;
+            schedule = !mHasPending;
+            mHasPending = true;
+        }
+        if (schedule) {
+            try {
+                mExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // e.g. executor was shut down, drop the value, so the next one is scheduled again
+                synchronized (this) {
+                    mHasPending = false;
+                    mPendingSettledCount = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop delivering values. Pending tasks will not call the listener.
+     */
+    void remove() {
+        mRemoved = true;
+    }
+
+    @Override
+    public void run() {
+        float settled0;
+        float settled1;
+        int settledCount;
+        float latest;
+        synchronized (this) {
+            if (!mHasPending) {
+                return;
+            }
+            settled0 = mPendingSettled[0];
+            settled1 = mPendingSettled[1];
+            settledCount = mPendingSettledCount;
+            latest = mPending;
+            mHasPending = false;
+            mPendingSettledCount = 0;
+        }
+        if (mRemoved) {
+            return;
+        }
+        if (settledCount > 0) {
+            listener.onDragProgress(settled0);
+        }
+        if (settledCount > 1) {
+            listener.onDragProgress(settled1);
+        }
+        listener.onDragProgress(latest);
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void addPendingSettled(float percent) {
+        if (mPendingSettledCount > 0 && mPendingSettled[mPendingSettledCount - 1] == percent) {
+            return;
+        }
+        if (mPendingSettledCount == mPendingSettled.length) {
+            // keep the last two, older one is the same as the newest
+            mPendingSettled[0] = mPendingSettled[1];
+            mPendingSettledCount--;
+        }
+        mPendingSettled[mPendingSettledCount++] = percent;
+    }
+
+    private static boolean isSettled(float percent) {
+        return percent == 0 || percent == 1;
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.italankin.slidinglayout;
+
+import android.content.Context;
+import android.support.v4.view.MotionEventCompat;
+import android.support.v4.view.VelocityTrackerCompat;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.ViewConfiguration;
+
+/**
+ * Detects vertical drags using touch slop and the active pointer. Unlike
+ * {@link android.view.GestureDetector} it does not post any messages, so it is cheap to feed
+ * every event into it.
+ */
+class DragDetector {
+
+    /**
+     * No gesture or the gesture has not crossed touch slop yet.
+     */
+    private static final int STATE_IDLE = 0;
+    /**
+     * Vertical drag is in progress.
+     */
+    private static final int STATE_DRAGGING = 1;
+    /**
+     * Gesture moved horizontally first or the drag was refused, ignore it until the next
+     * {@link MotionEvent#ACTION_DOWN}.
+     */
+    private static final int STATE_LOCKED_OUT = 2;
+
+    private final OnDragListener mListener;
+    private final int mTouchSlop;
+    private final int mMinFlingVelocity;
+    private final int mMaxFlingVelocity;
+
+    private VelocityTracker mVelocityTracker;
+
+    private int mState = STATE_IDLE;
+    private int mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+    private float mInitialX;
+    private float mInitialY;
+    private float mLastY;
+
+    DragDetector(Context context, OnDragListener listener) {
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        mListener = listener;
+    }
+
+    /**
+     * Feed the event to the detector.
+     *
+     * @param event motion event
+     * @return {@code true}, if the vertical drag is in progress
+     */
+    boolean onTouchEvent(MotionEvent event) {
+        int action = MotionEventCompat.getActionMasked(event);
+        if (action == MotionEvent.ACTION_DOWN) {
+            reset();
+            mActivePointerId = MotionEventCompat.getPointerId(event, 0);
+            mInitialX = event.getX();
+            mInitialY = mLastY = event.getY();
+        }
+        if (mState == STATE_LOCKED_OUT || mActivePointerId == MotionEvent.INVALID_POINTER_ID) {
+            return false;
+        }
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(event);
+
+        switch (action) {
+            case MotionEvent.ACTION_MOVE: {
+                int index = MotionEventCompat.findPointerIndex(event, mActivePointerId);
+                if (index < 0) {
+                    break;
+                }
+                float y = MotionEventCompat.getY(event, index);
+                if (mState == STATE_IDLE) {
+                    float dx = Math.abs(MotionEventCompat.getX(event, index) - mInitialX);
+                    float dy = Math.abs(y - mInitialY);
+                    if (dx > mTouchSlop && dx > dy) {
+                        // horizontal gesture, let others (e.g. pagers) handle it
+                        mState = STATE_LOCKED_OUT;
+                        return false;
+                    }
+                    if (dy > mTouchSlop) {
+                        if (!mListener.onDragStart(mInitialX, mInitialY, mInitialY - y)) {
+                            // leave the gesture to children
+                            mState = STATE_LOCKED_OUT;
+                            return false;
+                        }
+                        mState = STATE_DRAGGING;
+                        // do not apply touch slop distance, so overlay will not jump
+                        mLastY = y > mInitialY ? mInitialY + mTouchSlop : mInitialY - mTouchSlop;
+                    }
+                }
+                if (mState == STATE_DRAGGING) {
+                    float distance = mLastY - y;
+                    mLastY = y;
+                    if (distance != 0) {
+                        mListener.onDragMove(distance);
+                    }
+                }
+                break;
+            }
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                // the newest pointer takes control over the drag
+                int index = MotionEventCompat.getActionIndex(event);
+                mActivePointerId = MotionEventCompat.getPointerId(event, index);
+                mInitialX = MotionEventCompat.getX(event, index);
+                mInitialY = mLastY = MotionEventCompat.getY(event, index);
+                break;
+            }
+            case MotionEvent.ACTION_POINTER_UP: {
+                int index = MotionEventCompat.getActionIndex(event);
+                if (MotionEventCompat.getPointerId(event, index) == mActivePointerId) {
+                    // active pointer is going up, choose a new one
+                    int newIndex = index == 0 ? 1 : 0;
+                    mActivePointerId = MotionEventCompat.getPointerId(event, newIndex);
+                    mInitialX = MotionEventCompat.getX(event, newIndex);
+                    mInitialY = mLastY = MotionEventCompat.getY(event, newIndex);
+                }
+                break;
+            }
+            case MotionEvent.ACTION_UP: {
+                if (mState == STATE_DRAGGING) {
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                    float vx = VelocityTrackerCompat.getXVelocity(mVelocityTracker, mActivePointerId);
+                    float vy = VelocityTrackerCompat.getYVelocity(mVelocityTracker, mActivePointerId);
+                    boolean fling = Math.abs(vy) > mMinFlingVelocity && Math.abs(vy) > Math.abs(vx);
+                    mListener.onDragEnd(fling ? vy : 0);
+                    reset();
+                    return true;
+                }
+                reset();
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL: {
+                if (mState == STATE_DRAGGING) {
+                    mListener.onDragEnd(0);
+                }
+                reset();
+                break;
+            }
+        }
+        return mState == STATE_DRAGGING;
+    }
+
+    /**
+     * Release velocity tracker. Detector can be used after this call.
+     */
+    void recycle() {
+        reset();
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    /**
+     * Drop the gesture in progress.
+     */
+    void reset() {
+        mState = STATE_IDLE;
+        mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+        if (mVelocityTracker != null) {
+            mVelocityTracker.clear();
+        }
+    }
+
+    interface OnDragListener {
+        /**
+         * Called when gesture crossed touch slop vertically. If the drag is refused, the rest of
+         * the gesture is ignored.
+         *
+         * @param x  x coordinate of the gesture start
+         * @param y  y coordinate of the gesture start
+         * @param dy distance moved, positive values mean moving up
+         * @return {@code true}, if the drag should be started
+         */
+        boolean onDragStart(float x, float y, float dy);
+
+        /**
+         * @param dy distance moved since the last call, positive values mean moving up
+         */
+        void onDragMove(float dy);
+
+        /**
+         * Called when the drag is finished.
+         *
+         * @param velocityY fling velocity in px/s, or {@code 0} if no fling happened
+         */
+        void onDragEnd(float velocityY);
+    }
+
+}
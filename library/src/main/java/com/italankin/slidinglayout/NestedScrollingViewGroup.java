@@ -12,7 +12,9 @@ import android.view.View;
 import android.view.ViewGroup;
 
 /**
- * {@link ViewGroup} which layouts children with parent's size and supports nested scroll.
+ * {@link ViewGroup} which layouts children within parent's bounds according to their
+ * {@link LayoutParams} and supports nested scroll. The first child is placed at the top, others
+ * are anchored to the bottom, all children are centered horizontally.
  */
 class NestedScrollingViewGroup extends ViewGroup implements NestedScrollingChild, NestedScrollingParent {
 
@@ -75,7 +77,7 @@ class NestedScrollingViewGroup extends ViewGroup implements NestedScrollingChild
 
     @Override
     public boolean onNestedPreFling(View target, float velocityX, float velocityY) {
-        return false;
+        return dispatchNestedPreFling(velocityX, velocityY);
     }
 
     @Override
@@ -131,7 +133,8 @@ class NestedScrollingViewGroup extends ViewGroup implements NestedScrollingChild
 
     @Override
     public boolean dispatchNestedPreFling(float velocityX, float velocityY) {
-        return getTranslationY() > 0 || mNestedScrollingChildHelper.dispatchNestedPreFling(velocityX, velocityY);
+        // parent is asked first, so it receives the velocity even if it is dragging this view
+        return mNestedScrollingChildHelper.dispatchNestedPreFling(velocityX, velocityY) || getTranslationY() > 0;
     }
 
     @Override
@@ -158,22 +161,33 @@ class NestedScrollingViewGroup extends ViewGroup implements NestedScrollingChild
         for (int i = 0; i < count; i++) {
             View child = getChildAt(i);
             if (child.getVisibility() != GONE) {
-                child.measure(widthSpec, heightSpec);
+                LayoutParams lp = child.getLayoutParams();
+                child.measure(getChildMeasureSpec(widthSpec, 0, lp.width),
+                        getChildMeasureSpec(heightSpec, 0, lp.height));
             }
         }
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        int width = getMeasuredWidth();
+        int height = getMeasuredHeight();
         int count = getChildCount();
         for (int i = 0; i < count; i++) {
             View child = getChildAt(i);
-            int width = getMeasuredWidth();
-            int height = getMeasuredHeight();
             if (child.getVisibility() != GONE) {
-                child.layout(0, 0, width, height);
+                int childWidth = child.getMeasuredWidth();
+                int childHeight = child.getMeasuredHeight();
+                int left = (width - childWidth) / 2;
+                int top = i == 0 ? 0 : height - childHeight;
+                child.layout(left, top, left + childWidth, top + childHeight);
             }
         }
     }
 
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+    }
+
 }
@@ -0,0 +1,107 @@
+package com.italankin.slidinglayout;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+/**
+ * Bitmap copy of the overlay, which is drawn instead of the live view while it moves. Bitmap is
+ * reused between captures of the same size and released on memory pressure, if not in use.
+ */
+class OverlaySnapshot implements ComponentCallbacks2 {
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private boolean mActive = false;
+
+    /**
+     * Draw {@code view} into the bitmap and activate the snapshot.
+     *
+     * @param view view to capture
+     * @return {@code true}, if the view was captured
+     */
+    boolean capture(View view) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        if (mBitmap != null && mBitmap.getWidth() == width && mBitmap.getHeight() == height) {
+            mBitmap.eraseColor(0);
+        } else {
+            release();
+            try {
+                mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                // draw live view instead
+                return false;
+            }
+            if (mCanvas == null) {
+                mCanvas = new Canvas();
+            }
+            mCanvas.setBitmap(mBitmap);
+        }
+        int count = mCanvas.save();
+        mCanvas.translate(-view.getScrollX(), -view.getScrollY());
+        view.draw(mCanvas);
+        mCanvas.restoreToCount(count);
+        mActive = true;
+        return true;
+    }
+
+    /**
+     * @return {@code true}, if the snapshot should be drawn instead of the view
+     */
+    boolean isActive() {
+        return mActive;
+    }
+
+    /**
+     * Stop drawing the snapshot, bitmap is kept for the next capture.
+     */
+    void deactivate() {
+        mActive = false;
+    }
+
+    /**
+     * Draw the snapshot at the current position of the {@code view}.
+     */
+    void draw(Canvas canvas, View view) {
+        canvas.drawBitmap(mBitmap, view.getX(), view.getY(), null);
+    }
+
+    /**
+     * Deactivate the snapshot and release the bitmap.
+     */
+    void release() {
+        mActive = false;
+        if (mBitmap != null) {
+            if (mCanvas != null) {
+                mCanvas.setBitmap(null);
+            }
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (!mActive && level >= TRIM_MEMORY_RUNNING_LOW) {
+            release();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        if (!mActive) {
+            release();
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+}
@@ -1,62 +1,143 @@
 package com.italankin.slidinglayout;
 
 import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.ObjectAnimator;
 import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Outline;
 import android.graphics.Rect;
+import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.provider.Settings;
+import android.support.v4.view.MotionEventCompat;
 import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.util.TypedValue;
-import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewOutlineProvider;
 import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
 
 import java.util.ArrayList;
+import java.util.concurrent.Executor;
 
-public class SlidingLayout extends NestedScrollingViewGroup implements GestureDetector.OnGestureListener {
+public class SlidingLayout extends NestedScrollingViewGroup {
 
     public static final int STATE_GONE = 0;
     public static final int STATE_VISIBLE = 1;
     public static final float MIN_FLING_VELOCITY = 2f;
 
-    private final GestureDetector mDetector;
+    private static final Interpolator DEFAULT_INTERPOLATOR = new DecelerateInterpolator();
+    private static final Rect[] EMPTY_RECTS = new Rect[0];
+
+    /**
+     * Created on the first touch
+     */
+    private DragDetector mDetector;
 
     private View mContent;
     private View mOverlay;
 
     private int mOffset = 0;
     private int mMaxOffset;
+    /**
+     * Overlay height used to compute {@link #mMaxOffset} on the last layout, {@code -1} if views
+     * were not laid out yet
+     */
+    private int mLaidOutOverlayHeight = -1;
     private float mParallaxFactor = 0;
     private float mMinScrollPercent = 0.25f;
     private boolean mClipContent = true;
     private final Rect mContentClip = new Rect();
+    private boolean mContentClipped = false;
+    private float mOverlayCornerRadius = 0;
+    /**
+     * Negative value means elevation is not set
+     */
+    private float mOverlayElevation = -1;
+    private ViewOutlineProvider mOverlayOutlineProvider;
+    private boolean mOverlaySnapshotEnabled = false;
+    /**
+     * Created when snapshot mode is enabled
+     */
+    private OverlaySnapshot mOverlaySnapshot;
+    private boolean mOverlaySnapshotRegistered = false;
     /**
-     * Measured in px/ms
+     * Measured in px/ms, computed on first use
      */
-    private float mFlingVelocity;
+    private float mFlingVelocity = -1;
 
     private boolean mInterceptTouchEvents = false;
+    /**
+     * Whether current touch gesture can start a drag, evaluated on {@link MotionEvent#ACTION_DOWN}
+     */
+    private boolean mDragEligible = false;
+
+    private int mDragHandleId = NO_ID;
+    private Rect mDragRegionInsets;
+    private final ArrayList<Rect> mDragRegions = new ArrayList<>(0);
+    /**
+     * Drag regions relative to the overlay, computed on layout
+     */
+    private Rect[] mDragHitRects = EMPTY_RECTS;
+    private int mDragHitRectCount = 0;
 
     private int mState = STATE_GONE;
 
     private boolean mDragging = false;
+    private boolean mSettling = false;
+    /**
+     * Set while the running settle is cancelled to be reversed
+     */
+    private boolean mSettleInterrupted = false;
+    private float mSettleTargetOffset;
     private float mDraggingDy;
     private long mDraggingStart;
     private boolean mNestedScrollInProgress = false;
+    /**
+     * Fling velocity of the nested scroll target received during the drag, px/s
+     */
+    private float mNestedFlingVelocity = 0;
+    /**
+     * Distances consumed by the nested scrolling parent during the drag
+     */
+    private final int[] mParentConsumed = new int[2];
     private float mDragPercent = -1;
 
     private ValueAnimator mAnimContent;
     private ValueAnimator mAnimOverlay;
-    private Interpolator mAnimInterpolator = new DecelerateInterpolator();
+    private Interpolator mAnimInterpolator = DEFAULT_INTERPOLATOR;
     private int mAnimDuration = 300;
 
+    private int mBatchEditDepth = 0;
+    private boolean mPendingStateUpdate = false;
+    private int mPendingState;
+    private boolean mPendingViewsUpdate = false;
+    private boolean mPendingClipUpdate = false;
+    private boolean mPendingAnimation = false;
+
     private ArrayList<OnDragProgressListener> mDragProgressListeners = new ArrayList<>(0);
+    private ArrayList<ConflatedProgressDispatcher> mAsyncDragProgressDispatchers = new ArrayList<>(0);
+
+    private final SlidingStatePublisher mStatePublisher = new SlidingStatePublisher();
+
+    private ArrayList<OnVisibilityChangeListener> mVisibilityChangeListeners = new ArrayList<>(0);
+    private boolean mContentObscured = false;
+    private boolean mOverlayHidden = false;
+
+    private OnOverlayWarmUpListener mWarmUpListener;
+    private MessageQueue.IdleHandler mWarmUpHandler;
+    private boolean mWarmUpPending = false;
+    private boolean mOverlayWarm = false;
 
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
@@ -69,6 +150,11 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
     public SlidingLayout(Context context, AttributeSet attrs) {
         super(context, attrs);
 
+        if (attrs == null) {
+            // nothing to resolve, views created from code skip styled attributes lookup
+            return;
+        }
+
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.SlidingLayout);
 
         float parallaxFactor = -1;
@@ -80,6 +166,13 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
             parallaxFactor = a.getFloat(R.styleable.SlidingLayout_sl_parallaxFactor, 0);
             mOffset = a.getDimensionPixelSize(R.styleable.SlidingLayout_sl_offset, 0);
             mClipContent = a.getBoolean(R.styleable.SlidingLayout_sl_clipContent, mClipContent);
+            mDragHandleId = a.getResourceId(R.styleable.SlidingLayout_sl_dragHandle, NO_ID);
+            mOverlayCornerRadius = a.getDimension(R.styleable.SlidingLayout_sl_overlayCornerRadius,
+                    mOverlayCornerRadius);
+            mOverlayElevation = a.getDimension(R.styleable.SlidingLayout_sl_overlayElevation,
+                    mOverlayElevation);
+            mOverlaySnapshotEnabled = a.getBoolean(R.styleable.SlidingLayout_sl_overlaySnapshot,
+                    mOverlaySnapshotEnabled);
         } finally {
             a.recycle();
         }
@@ -91,10 +184,6 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
         if (minScroll != -1) {
             setMinScroll(minScroll);
         }
-
-        mFlingVelocity = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, MIN_FLING_VELOCITY,
-                context.getResources().getDisplayMetrics());
-        mDetector = new GestureDetector(context, this);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -108,11 +197,11 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
      * @param state state value
      */
     public void setInitialOverlayState(int state) {
-        if (state != STATE_GONE && state != STATE_VISIBLE) {
-            throw new IllegalArgumentException(
-                    "state must be one of OverlayLayout.STATE_GONE or OverlayLayout.STATE_VISIBLE");
-        }
+        checkState(state);
         mState = state;
+        if (isViewsLaidOut()) {
+            updateViewsState();
+        }
     }
 
     /**
@@ -125,7 +214,7 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
             throw new IllegalArgumentException("factor must be in range [0;1], found: " + factor);
         }
         mParallaxFactor = factor;
-        updateViewsState();
+        requestViewsUpdate();
     }
 
     /**
@@ -136,7 +225,7 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
      */
     public void setOffset(int offset) {
         mOffset = offset;
-        updateViewsState();
+        requestViewsUpdate();
     }
 
     /**
@@ -196,17 +285,131 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
     public void setClipContent(boolean clip) {
         if (mClipContent != clip) {
             mClipContent = clip;
-            if (!hasTargets()) {
-                return;
+            if (mBatchEditDepth > 0) {
+                mPendingClipUpdate = true;
+            } else if (hasTargets()) {
+                updateContentClip();
             }
-            if (mClipContent) {
-                dispatchDragCurrentProgress();
-            } else {
-                ViewCompat.setClipBounds(mContent, null);
+        }
+    }
+
+    /**
+     * Set radius of overlay's top corners. Overlay is clipped to its outline, which is applied by
+     * hardware renderer and does not require redrawing while overlay moves.
+     * Requires API 21, on older versions corners are not rounded.
+     * Equal to XML attribute {@code sl_overlayCornerRadius}.
+     *
+     * @param radius radius in pixels, {@code 0} to disable
+     */
+    public void setOverlayCornerRadius(float radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius must be >= 0, found: " + radius);
+        }
+        mOverlayCornerRadius = radius;
+        if (hasTargets()) {
+            updateOverlayOutline();
+        }
+    }
+
+    /**
+     * Set elevation of the overlay. Requires API 21, on older versions shadow is not drawn.
+     * Equal to XML attribute {@code sl_overlayElevation}.
+     *
+     * @param elevation elevation in pixels
+     */
+    public void setOverlayElevation(float elevation) {
+        if (elevation < 0) {
+            throw new IllegalArgumentException("elevation must be >= 0, found: " + elevation);
+        }
+        mOverlayElevation = elevation;
+        if (hasTargets()) {
+            updateOverlayOutline();
+        }
+    }
+
+    /**
+     * Enable snapshot mode for overlays, which are too heavy to redraw while moving (e.g. maps or
+     * charts). When the drag or animation starts, overlay is drawn once into a bitmap, which is
+     * drawn instead of the live overlay until it settles. Bitmap is reused between gestures and
+     * released on memory pressure. Overlay's outline and elevation are not drawn while the
+     * snapshot is shown. Views drawn outside of the software canvas (e.g. {@code SurfaceView})
+     * will not be captured.
+     * Equal to XML attribute {@code sl_overlaySnapshot}.
+     *
+     * @param enabled whether snapshot mode is enabled
+     */
+    public void setOverlaySnapshotEnabled(boolean enabled) {
+        if (mOverlaySnapshotEnabled == enabled) {
+            return;
+        }
+        mOverlaySnapshotEnabled = enabled;
+        if (enabled) {
+            if (getWindowToken() != null) {
+                registerOverlaySnapshot();
             }
+        } else if (mOverlaySnapshot != null) {
+            unregisterOverlaySnapshot();
+            mOverlaySnapshot.release();
+            mOverlaySnapshot = null;
+            invalidate();
         }
     }
 
+    /**
+     * Set the view inside overlay, which can be used to drag it, e.g. a header. Touches outside of
+     * drag regions will not start a drag. Nested scrolling is not affected by drag regions.
+     * Equal to XML attribute {@code sl_dragHandle}.
+     *
+     * @param id id of the view, or {@link View#NO_ID} to remove the handle
+     */
+    public void setDragHandle(int id) {
+        mDragHandleId = id;
+        updateDragRegions();
+    }
+
+    /**
+     * Set drag region as overlay bounds with applied insets.
+     *
+     * @param left   left inset
+     * @param top    top inset
+     * @param right  right inset
+     * @param bottom bottom inset
+     * @see #setDragHandle(int)
+     */
+    public void setDragRegionInsets(int left, int top, int right, int bottom) {
+        if (mDragRegionInsets == null) {
+            mDragRegionInsets = new Rect();
+        }
+        mDragRegionInsets.set(left, top, right, bottom);
+        updateDragRegions();
+    }
+
+    /**
+     * Set drag regions relative to the overlay.
+     *
+     * @param regions regions, pass nothing to remove all regions
+     * @see #setDragHandle(int)
+     */
+    public void setDragRegions(Rect... regions) {
+        mDragRegions.clear();
+        if (regions != null) {
+            for (Rect region : regions) {
+                mDragRegions.add(new Rect(region));
+            }
+        }
+        updateDragRegions();
+    }
+
+    /**
+     * Remove all drag regions, including handle and insets, so the whole overlay can be dragged.
+     */
+    public void clearDragRegions() {
+        mDragHandleId = NO_ID;
+        mDragRegionInsets = null;
+        mDragRegions.clear();
+        updateDragRegions();
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Public methods
     ///////////////////////////////////////////////////////////////////////////
@@ -215,14 +418,91 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
      * Hide overlay view.
      */
     public void hideOverlay() {
-        hideOverlayInternal();
+        setOverlayState(STATE_GONE, true);
     }
 
     /**
      * Show overlay view.
      */
     public void showOverlay() {
-        showOverlayInternal();
+        setOverlayState(STATE_VISIBLE, true);
+    }
+
+    /**
+     * Change state of the overlay. Animation is skipped if the view is not visible to the user or
+     * animations are disabled in the system settings.
+     *
+     * @param state   one of {@link #STATE_GONE} or {@link #STATE_VISIBLE}
+     * @param animate whether the transition should be animated
+     */
+    public void setOverlayState(int state, boolean animate) {
+        checkState(state);
+        if (mBatchEditDepth > 0) {
+            mPendingState = state;
+            mPendingAnimation = animate;
+            mPendingStateUpdate = true;
+            return;
+        }
+        applyOverlayState(state, animate);
+    }
+
+    /**
+     * Reset layout to the {@code state} without animation, dropping any drag or animation in
+     * progress. Intended for recycled views (e.g. in {@code RecyclerView} items), does not
+     * allocate.
+     *
+     * @param state one of {@link #STATE_GONE} or {@link #STATE_VISIBLE}
+     */
+    public void resetState(int state) {
+        checkState(state);
+        if (mDetector != null) {
+            mDetector.reset();
+        }
+        mDragEligible = false;
+        mNestedScrollInProgress = false;
+        mDraggingDy = 0;
+        cancelOverlayWarmUp();
+        mOverlayWarm = false;
+        setOverlayState(state, false);
+    }
+
+    /**
+     * Start a batch of changes. Until {@link #endBatchEdit()} is called, setters will not update
+     * views state, all changes will be applied at once. Calls can be nested.
+     */
+    public void beginBatchEdit() {
+        mBatchEditDepth++;
+    }
+
+    /**
+     * Finish a batch of changes started by {@link #beginBatchEdit()} and apply them.
+     */
+    public void endBatchEdit() {
+        if (mBatchEditDepth == 0) {
+            throw new IllegalStateException("endBatchEdit() called without beginBatchEdit()");
+        }
+        if (--mBatchEditDepth > 0) {
+            return;
+        }
+        boolean stateUpdate = mPendingStateUpdate;
+        boolean viewsUpdate = mPendingViewsUpdate;
+        boolean clipUpdate = mPendingClipUpdate;
+        boolean animate = mPendingAnimation;
+        mPendingStateUpdate = false;
+        mPendingViewsUpdate = false;
+        mPendingClipUpdate = false;
+        mPendingAnimation = false;
+        if (stateUpdate) {
+            if (viewsUpdate && animate && hasTargets()) {
+                // animation must use the new overlay travel
+                updateMaxOffset();
+            }
+            applyOverlayState(mPendingState, animate);
+        } else if (viewsUpdate) {
+            updateViewsState();
+        } else if (clipUpdate && hasTargets()) {
+            updateContentClip();
+        }
     }
 
     /**
@@ -236,6 +516,24 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
         }
     }
 
+    /**
+     * Add listener to subscribe to drag events, which will be called on the {@code executor}.
+     * Values are conflated: if the listener is not keeping up, intermediate values are dropped
+     * and only the latest one is delivered. Settled values ({@code 0} and {@code 1}) are always
+     * delivered. Use a single threaded executor to receive values in order.
+     *
+     * @param listener object
+     * @param executor executor to call the listener on
+     */
+    public void addOnDragProgressListener(OnDragProgressListener listener, Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        if (listener != null) {
+            mAsyncDragProgressDispatchers.add(new ConflatedProgressDispatcher(listener, executor));
+        }
+    }
+
     /**
      * Remove previously added listener.
      *
@@ -243,6 +541,63 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
      */
     public void removeOnDragProgressListener(OnDragProgressListener listener) {
         mDragProgressListeners.remove(listener);
+        for (int i = mAsyncDragProgressDispatchers.size() - 1; i >= 0; i--) {
+            ConflatedProgressDispatcher dispatcher = mAsyncDragProgressDispatchers.get(i);
+            if (dispatcher.listener == listener) {
+                dispatcher.remove();
+                mAsyncDragProgressDispatchers.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Add listener to be notified when content becomes fully obscured by overlay or revealed,
+     * and when overlay becomes fully hidden or shown, e.g. to pause work in invisible views.
+     * Views are considered visible until reported otherwise.
+     *
+     * @param listener object
+     */
+    public void addOnVisibilityChangeListener(OnVisibilityChangeListener listener) {
+        if (listener != null) {
+            mVisibilityChangeListeners.add(listener);
+        }
+    }
+
+    /**
+     * Remove previously added listener.
+     *
+     * @param listener object
+     */
+    public void removeOnVisibilityChangeListener(OnVisibilityChangeListener listener) {
+        mVisibilityChangeListeners.remove(listener);
+    }
+
+    /**
+     * @return {@code true}, if content is fully covered by the overlay
+     * @see OnVisibilityChangeListener
+     */
+    public boolean isContentObscured() {
+        return mContentObscured;
+    }
+
+    /**
+     * @return {@code true}, if overlay is fully moved out of the layout's bounds
+     * @see OnVisibilityChangeListener
+     */
+    public boolean isOverlayHidden() {
+        return mOverlayHidden;
+    }
+
+    /**
+     * Set listener, which will be called when the main thread is idle and a drag is likely to
+     * start soon (e.g. touch went down on the overlay), so the overlay can be prepared before the
+     * first frame of the drag. Overlay's hardware layer, if any, is built before the call
+     * (API 16+).
+     *
+     * @param listener object, or {@code null} to remove
+     */
+    public void setOnOverlayWarmUpListener(OnOverlayWarmUpListener listener) {
+        mWarmUpListener = listener;
     }
 
     /**
@@ -266,6 +621,18 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
         return mContent;
     }
 
+    /**
+     * Read current state into {@code out}. Unlike other methods, this one is thread safe and does
+     * not allocate, so it can be used, for example, from render threads.
+     *
+     * @param out object to store the state into
+     * @return {@code out}
+     */
+    public SlidingState getSlidingState(SlidingState out) {
+        mStatePublisher.read(out);
+        return out;
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Nested scrolling
     ///////////////////////////////////////////////////////////////////////////
@@ -278,10 +645,21 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
 
     @Override
     public void onNestedPreScroll(View target, int dx, int dy, int[] consumed) {
+        // the layout which started the drag owns the whole gesture, so nested parents
+        // (e.g. another SlidingLayout) will not receive deltas and start their own drags
         if (mDragging) {
-            onDrag(dy);
-            consumed[1] = dy;
-            dy = 0;
+            if (dx != 0) {
+                // parent's helper resets consumed values, so it must not touch ours
+                mParentConsumed[0] = 0;
+                mParentConsumed[1] = 0;
+                super.onNestedPreScroll(target, dx, 0, mParentConsumed);
+                consumed[0] += mParentConsumed[0];
+            }
+            if (dy != 0) {
+                onDrag(dy);
+                consumed[1] = dy;
+            }
+            return;
         }
         super.onNestedPreScroll(target, dx, dy, consumed);
     }
@@ -291,58 +669,80 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
         if (!hasTargets()) {
             ensureTargets();
         }
-        // if we have unconsumed values and scroll is happening downwards
-        // start dragging
-        if (dyUnconsumed < 0 && !mDragging && hasTargets()) {
+        // if we have unconsumed values, scroll is happening downwards and overlay can move,
+        // start dragging, otherwise leftover is passed to the nested scrolling parent
+        if (dyUnconsumed < 0 && !mDragging && hasTargets() &&
+                mOverlay.getTranslationY() < mMaxOffset) {
             startDrag();
+        } else if (dyConsumed < 0 && !ViewCompat.canScrollVertically(target, -1)) {
+            // target reached its top edge, next scroll will start a drag
+            requestOverlayWarmUp();
         }
         if (mDragging) {
-            onDrag(dyUnconsumed);
+            if (dyUnconsumed != 0) {
+                onDrag(dyUnconsumed);
+            }
             return;
         }
         super.onNestedScroll(target, dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed);
     }
 
+    @Override
+    public boolean onNestedPreFling(View target, float velocityX, float velocityY) {
+        if (mDragging) {
+            // settle decision is made in onStopNestedScroll
+            mNestedFlingVelocity = velocityY;
+            return true;
+        }
+        return super.onNestedPreFling(target, velocityX, velocityY);
+    }
+
     @Override
     public void onStopNestedScroll(View target) {
         super.onStopNestedScroll(target);
         mNestedScrollInProgress = false;
-        long now = System.currentTimeMillis();
-        if (Math.abs(mDraggingDy / (now - mDraggingStart)) > mFlingVelocity && mDraggingDy < 0) {
-            // fling happened
-            hideOverlay();
+        // only the layout which was dragging settles
+        if (!mDragging) {
             return;
         }
-        if (mDragging) {
+        float flingVelocity = mNestedFlingVelocity;
+        mNestedFlingVelocity = 0;
+        if (flingVelocity < 0) {
+            hideOverlay();
+        } else if (flingVelocity > 0) {
+            showOverlay();
+        } else if (mDraggingDy < 0 && Math.abs(mDraggingDy /
+                (System.currentTimeMillis() - mDraggingStart)) > getFlingVelocity()) {
+            // target did not report a fling, but the drag was fast enough
+            hideOverlay();
+        } else {
             releaseDrag();
         }
     }
 
     @Override
     public boolean onInterceptTouchEvent(MotionEvent event) {
-        if (mNestedScrollInProgress || !mInterceptTouchEvents && event.getY() < mOverlay.getY() &&
-                !mDragging) {
-            return false;
+        if (MotionEventCompat.getActionMasked(event) == MotionEvent.ACTION_DOWN) {
+            mDragEligible = isDragEligible(event.getX(), event.getY());
+            if (mDragEligible) {
+                requestOverlayWarmUp();
+            }
         }
-        mDetector.onTouchEvent(event);
-        if (mDragging && event.getAction() == MotionEvent.ACTION_UP) {
-            releaseDrag();
-            return true;
+        if (mNestedScrollInProgress || !mDragEligible) {
+            return false;
         }
-        return super.onInterceptTouchEvent(event);
+        return ensureDetector().onTouchEvent(event);
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        if (mNestedScrollInProgress || !mInterceptTouchEvents && event.getY() < mOverlay.getY() &&
-                !mDragging) {
-            return false;
+        if (MotionEventCompat.getActionMasked(event) == MotionEvent.ACTION_DOWN) {
+            mDragEligible = isDragEligible(event.getX(), event.getY());
         }
-        mDetector.onTouchEvent(event);
-        if (mDragging && event.getAction() == MotionEvent.ACTION_UP) {
-            releaseDrag();
-            return true;
+        if (mNestedScrollInProgress || !mDragEligible) {
+            return false;
         }
+        ensureDetector().onTouchEvent(event);
         return super.onTouchEvent(event);
     }
 
@@ -353,7 +753,55 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
         super.onLayout(changed, l, t, r, b);
+        View content = mContent;
+        View overlay = mOverlay;
         ensureTargets();
+        if (hasTargets()) {
+            int laidOutOverlayHeight = mLaidOutOverlayHeight;
+            // views have valid geometry from now on, so state can be published
+            mLaidOutOverlayHeight = mOverlay.getHeight();
+            if (content != mContent || overlay != mOverlay || laidOutOverlayHeight < 0) {
+                updateViewsState();
+            } else if (mOverlay.getHeight() != laidOutOverlayHeight) {
+                // e.g. window was resized by IME
+                remapViewsState();
+            } else {
+                // positions of the views could change, but overlay travel did not
+                updateContentClip();
+            }
+        }
+        updateDragRegions();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mOverlaySnapshotEnabled) {
+            registerOverlaySnapshot();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mDetector != null) {
+            mDetector.recycle();
+        }
+        cancelOverlayWarmUp();
+        if (mOverlaySnapshot != null) {
+            unregisterOverlaySnapshot();
+            mOverlaySnapshot.release();
+        }
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if (child == mOverlay && mOverlaySnapshot != null && mOverlaySnapshot.isActive()) {
+            // live overlay is out of the draw traversal while the snapshot is shown
+            mOverlaySnapshot.draw(canvas, child);
+            return false;
+        }
+        return super.drawChild(canvas, child, drawingTime);
     }
 
     @Override
@@ -370,6 +818,10 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
             SavedState s = (SavedState) state;
             super.onRestoreInstanceState(s.getSuperState());
             mState = s.state;
+            if (isViewsLaidOut()) {
+                // layout does not apply the state again
+                updateViewsState();
+            }
         } else {
             super.onRestoreInstanceState(state);
         }
@@ -384,47 +836,15 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
         } else if (getChildCount() > 1) {
             // basically assuming the first added view is content and the second is overlay
             mContent = getChildAt(0);
-            mOverlay = getChildAt(1);
-            if (mAnimOverlay == null) {
-                mAnimOverlay = ObjectAnimator.ofFloat(mOverlay, "translationY", 0, 0);
-                mAnimOverlay.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                    @Override
-                    public void onAnimationUpdate(ValueAnimator animation) {
-                        dispatchDragCurrentProgress();
-                    }
-                });
-                mAnimOverlay.addListener(new Animator.AnimatorListener() {
-                    @Override
-                    public void onAnimationStart(Animator animation) {
-                    }
-
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        mDragging = false;
-                        dispatchDragCurrentProgress();
-                    }
-
-                    @Override
-                    public void onAnimationCancel(Animator animation) {
-                    }
-
-                    @Override
-                    public void onAnimationRepeat(Animator animation) {
-                    }
-                });
-                mAnimOverlay.setDuration(mAnimDuration);
-                mAnimOverlay.setInterpolator(mAnimInterpolator);
-            } else {
-                mAnimOverlay.setTarget(mOverlay);
+            View overlay = getChildAt(1);
+            if (mOverlay != overlay) {
+                mOverlay = overlay;
+                updateOverlayOutline();
             }
-            if (mAnimContent == null) {
-                mAnimContent = ObjectAnimator.ofFloat(mContent, "translationY", 0, 0);
-                mAnimContent.setDuration(mAnimDuration);
-                mAnimContent.setInterpolator(mAnimInterpolator);
-            } else {
+            if (mAnimOverlay != null) {
+                mAnimOverlay.setTarget(mOverlay);
                 mAnimContent.setTarget(mContent);
             }
-            updateViewsState();
         } else {
             mAnimOverlay = null;
             mAnimContent = null;
@@ -435,17 +855,304 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
         return mContent != null && mOverlay != null;
     }
 
+    /**
+     * @return {@code true}, if the state was applied to the views on layout
+     */
+    private boolean isViewsLaidOut() {
+        return mLaidOutOverlayHeight >= 0 && hasTargets();
+    }
+
+    /**
+     * Apply corner radius and elevation to the overlay.
+     */
+    private void updateOverlayOutline() {
+        if (mOverlayElevation >= 0) {
+            ViewCompat.setElevation(mOverlay, mOverlayElevation);
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        if (mOverlayCornerRadius > 0) {
+            if (mOverlayOutlineProvider == null) {
+                mOverlayOutlineProvider = new OverlayOutlineProvider();
+            }
+            if (mOverlay.getOutlineProvider() != mOverlayOutlineProvider) {
+                mOverlay.setOutlineProvider(mOverlayOutlineProvider);
+                mOverlay.setClipToOutline(true);
+            } else {
+                mOverlay.invalidateOutline();
+            }
+        } else if (mOverlayOutlineProvider != null &&
+                mOverlay.getOutlineProvider() == mOverlayOutlineProvider) {
+            mOverlay.setOutlineProvider(ViewOutlineProvider.BACKGROUND);
+            mOverlay.setClipToOutline(false);
+        }
+    }
+
+    /**
+     * Create animators, if they were not created yet. Targets must be set.
+     */
+    private void ensureAnimators() {
+        if (mAnimOverlay != null) {
+            return;
+        }
+        mAnimOverlay = ObjectAnimator.ofFloat(mOverlay, "translationY", 0, 0);
+        OverlayAnimatorListener listener = new OverlayAnimatorListener();
+        mAnimOverlay.addUpdateListener(listener);
+        mAnimOverlay.addListener(listener);
+        mAnimOverlay.setDuration(mAnimDuration);
+        mAnimOverlay.setInterpolator(mAnimInterpolator);
+        mAnimContent = ObjectAnimator.ofFloat(mContent, "translationY", 0, 0);
+        mAnimContent.setDuration(mAnimDuration);
+        mAnimContent.setInterpolator(mAnimInterpolator);
+    }
+
+    private DragDetector ensureDetector() {
+        if (mDetector == null) {
+            mDetector = new DragDetector(getContext(), new DragListener());
+        }
+        return mDetector;
+    }
+
+    private float getFlingVelocity() {
+        if (mFlingVelocity < 0) {
+            mFlingVelocity = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                    MIN_FLING_VELOCITY, getResources().getDisplayMetrics());
+        }
+        return mFlingVelocity;
+    }
+
+    /**
+     * @return {@code true}, if overlay is animating to its state
+     */
+    private boolean isSettling() {
+        return mSettling;
+    }
+
+    private void cancelAnimations() {
+        if (mAnimOverlay != null) {
+            mAnimContent.cancel();
+            mAnimOverlay.cancel();
+        }
+        mDragging = false;
+    }
+
+    /**
+     * @return {@code true}, if state transitions should be animated
+     */
+    private boolean shouldAnimate() {
+        return ViewCompat.isLaidOut(this) && getWindowVisibility() == VISIBLE && isShown() &&
+                getAnimatorDurationScale() > 0;
+    }
+
+    @SuppressWarnings("deprecation")
+    private float getAnimatorDurationScale() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return Settings.Global.getFloat(getContext().getContentResolver(),
+                    Settings.Global.ANIMATOR_DURATION_SCALE, 1);
+        } else {
+            return Settings.System.getFloat(getContext().getContentResolver(),
+                    Settings.System.ANIMATOR_DURATION_SCALE, 1);
+        }
+    }
+
+    private void checkState(int state) {
+        if (state != STATE_GONE && state != STATE_VISIBLE) {
+            throw new IllegalArgumentException(
+                    "state must be one of SlidingLayout.STATE_GONE or SlidingLayout.STATE_VISIBLE");
+        }
+    }
+
+    private void requestViewsUpdate() {
+        if (mBatchEditDepth > 0) {
+            mPendingViewsUpdate = true;
+        } else {
+            updateViewsState();
+        }
+    }
+
+    /**
+     * @param touchX x coordinate of {@link MotionEvent#ACTION_DOWN} event
+     * @param touchY y coordinate of {@link MotionEvent#ACTION_DOWN} event
+     * @return {@code true}, if the gesture started at the point is allowed to drag overlay
+     */
+    private boolean isDragEligible(float touchX, float touchY) {
+        if (!hasTargets()) {
+            ensureTargets();
+        }
+        if (!hasTargets()) {
+            return false;
+        }
+        float x = touchX - mOverlay.getX();
+        float y = touchY - mOverlay.getY();
+        if (y < 0 || x < 0 || x >= mOverlay.getWidth()) {
+            // touch is outside of the overlay
+            return mInterceptTouchEvents;
+        }
+        if (!hasDragRegions()) {
+            return true;
+        }
+        for (int i = 0; i < mDragHitRectCount; i++) {
+            if (mDragHitRects[i].contains((int) x, (int) y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param dy drag distance, positive values mean moving up
+     * @return {@code true}, if overlay can move in the direction of the drag
+     */
+    private boolean canMoveOverlay(float dy) {
+        float ty = mOverlay.getTranslationY();
+        return dy < 0 ? ty < mMaxOffset : ty > 0;
+    }
+
+    /**
+     * @return {@code true}, if a drag started at the point can be handled by {@code v} or the
+     * topmost of its descendants under the point, like {@code ViewPager} does for horizontal
+     * scrolls.
+     * Nested {@link SlidingLayout}s handle the drag, if it is eligible and their overlay can move,
+     * so the innermost layout consumes the drag first.
+     */
+    private static boolean canConsumeDrag(View v, boolean checkV, float x, float y, float dy) {
+        if (v instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) v;
+            float localX = x + v.getScrollX();
+            float localY = y + v.getScrollY();
+            for (int i = group.getChildCount() - 1; i >= 0; i--) {
+                View child = group.getChildAt(i);
+                float left = child.getX();
+                float top = child.getY();
+                if (child.getVisibility() == VISIBLE &&
+                        localX >= left && localX < left + child.getWidth() &&
+                        localY >= top && localY < top + child.getHeight()) {
+                    if (canConsumeDrag(child, true, localX - left, localY - top, dy)) {
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+        if (!checkV) {
+            return false;
+        }
+        if (v instanceof SlidingLayout) {
+            SlidingLayout layout = (SlidingLayout) v;
+            return layout.isDragEligible(x, y) && layout.canMoveOverlay(dy);
+        }
+        // finger moving up scrolls content down
+        return ViewCompat.canScrollVertically(v, dy > 0 ? 1 : -1);
+    }
+
+    private boolean hasDragRegions() {
+        return mDragHandleId != NO_ID || mDragRegionInsets != null || !mDragRegions.isEmpty();
+    }
+
+    /**
+     * Compute drag regions relative to the overlay.
+     */
+    private void updateDragRegions() {
+        mDragHitRectCount = 0;
+        if (!hasTargets() || !hasDragRegions()) {
+            return;
+        }
+        int count = mDragRegions.size() + 2;
+        if (mDragHitRects.length < count) {
+            Rect[] rects = new Rect[count];
+            System.arraycopy(mDragHitRects, 0, rects, 0, mDragHitRects.length);
+            for (int i = mDragHitRects.length; i < count; i++) {
+                rects[i] = new Rect();
+            }
+            mDragHitRects = rects;
+        }
+        int width = mOverlay.getWidth();
+        int height = mOverlay.getHeight();
+        if (mDragHandleId != NO_ID) {
+            View handle = mOverlay.findViewById(mDragHandleId);
+            if (handle != null) {
+                Rect rect = mDragHitRects[mDragHitRectCount++];
+                rect.set(0, 0, handle.getWidth(), handle.getHeight());
+                if (handle != mOverlay) {
+                    ((ViewGroup) mOverlay).offsetDescendantRectToMyCoords(handle, rect);
+                }
+            }
+        }
+        if (mDragRegionInsets != null) {
+            mDragHitRects[mDragHitRectCount++].set(mDragRegionInsets.left, mDragRegionInsets.top,
+                    width - mDragRegionInsets.right, height - mDragRegionInsets.bottom);
+        }
+        for (int i = 0, size = mDragRegions.size(); i < size; i++) {
+            mDragHitRects[mDragHitRectCount++].set(mDragRegions.get(i));
+        }
+    }
+
     private void startDrag() {
-        if (mAnimOverlay.isRunning()) {
+        if (isSettling()) {
             return;
         }
         mDraggingStart = System.currentTimeMillis();
         mDraggingDy = 0;
+        mNestedFlingVelocity = 0;
         mDragging = true;
+        startOverlaySnapshot();
+        notifyStateChanged();
+        // warm up again before the next drag
+        cancelOverlayWarmUp();
+        mOverlayWarm = false;
+    }
+
+    /**
+     * Schedule overlay warm up on the next main thread idle.
+     */
+    private void requestOverlayWarmUp() {
+        if (mWarmUpPending || mOverlayWarm || mDragging || !hasTargets()) {
+            return;
+        }
+        if (mWarmUpHandler == null) {
+            mWarmUpHandler = new MessageQueue.IdleHandler() {
+                @Override
+                public boolean queueIdle() {
+                    mWarmUpPending = false;
+                    warmUpOverlay();
+                    return false;
+                }
+            };
+        }
+        mWarmUpPending = true;
+        Looper.myQueue().addIdleHandler(mWarmUpHandler);
+    }
+
+    private void cancelOverlayWarmUp() {
+        if (mWarmUpPending) {
+            mWarmUpPending = false;
+            Looper.myQueue().removeIdleHandler(mWarmUpHandler);
+        }
+    }
+
+    private void warmUpOverlay() {
+        if (mDragging || !hasTargets() || getWindowVisibility() != VISIBLE) {
+            return;
+        }
+        mOverlayWarm = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            buildOverlayLayer();
+        }
+        if (mWarmUpListener != null) {
+            mWarmUpListener.onOverlayWarmUp(mOverlay);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void buildOverlayLayer() {
+        if (mOverlay.getLayerType() != LAYER_TYPE_NONE) {
+            mOverlay.buildLayer();
+        }
     }
 
     private void onDrag(float dy) {
-        if (mAnimOverlay.isRunning()) {
+        if (isSettling()) {
             return;
         }
         float ty = mOverlay.getTranslationY() - dy;
@@ -478,52 +1185,118 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
     }
 
     private void releaseDrag() {
-        if (mAnimOverlay.isRunning()) {
+        if (isSettling()) {
             return;
         }
         if (mDragging) {
             float ty = Math.abs(mOverlay.getTranslationY());
             if (mState == STATE_VISIBLE) {
                 if (ty > mMaxOffset * mMinScrollPercent) {
-                    hideOverlayInternal();
+                    settleToState(STATE_GONE);
                 } else {
-                    showOverlayInternal();
+                    settleToState(STATE_VISIBLE);
                 }
             } else {
                 if (ty > mMaxOffset - mMaxOffset * mMinScrollPercent) {
-                    hideOverlayInternal();
+                    settleToState(STATE_GONE);
                 } else {
-                    showOverlayInternal();
+                    settleToState(STATE_VISIBLE);
                 }
             }
         }
     }
 
+    /**
+     * Move views to the {@code state} with animation, if animations are allowed.
+     */
+    private void settleToState(int state) {
+        if (shouldAnimate()) {
+            animateToState(state);
+        } else {
+            jumpToState(state);
+        }
+    }
+
+    private void jumpToState(int state) {
+        cancelAnimations();
+        mState = state;
+        updateViewsState();
+    }
+
+    private void applyOverlayState(int state, boolean animate) {
+        if (!hasTargets()) {
+            ensureTargets();
+        }
+        if (!hasTargets()) {
+            mState = state;
+            return;
+        }
+        if (animate) {
+            settleToState(state);
+        } else {
+            jumpToState(state);
+        }
+    }
+
+    private void animateToState(int state) {
+        if (isSettling()) {
+            if (mState == state) {
+                // already settling to this state
+                return;
+            }
+            // reverse the settle from the current position, interrupted animation is not
+            // reported as finished
+            mSettleInterrupted = true;
+            cancelAnimations();
+            mSettleInterrupted = false;
+            mSettling = false;
+        }
+        if (state == STATE_VISIBLE) {
+            showOverlayInternal();
+        } else {
+            hideOverlayInternal();
+        }
+    }
+
     private void hideOverlayInternal() {
-        if (mAnimOverlay.isRunning()) {
+        if (isSettling()) {
             return;
         }
+        ensureAnimators();
         mState = STATE_GONE;
-        if (mParallaxFactor > 0) {
+        if (mContent.getTranslationY() != 0) {
             mAnimContent.setFloatValues(mContent.getTranslationY(), 0);
             mAnimContent.start();
         }
+        // drag is over, overlay is animated from now on
+        mDragging = false;
+        mSettling = true;
+        startOverlaySnapshot();
+        mSettleTargetOffset = mMaxOffset;
         mAnimOverlay.setFloatValues(mOverlay.getTranslationY(), mMaxOffset);
         mAnimOverlay.start();
+        notifyStateChanged();
     }
 
     private void showOverlayInternal() {
-        if (mAnimOverlay.isRunning()) {
+        if (isSettling()) {
             return;
         }
+        ensureAnimators();
         mState = STATE_VISIBLE;
-        if (mParallaxFactor > 0) {
-            mAnimContent.setFloatValues(mContent.getTranslationY(),
-                    -mMaxOffset * mParallaxFactor);
+        float contentTranslationY = -mMaxOffset * mParallaxFactor;
+        if (mContent.getTranslationY() != contentTranslationY) {
+            mAnimContent.setFloatValues(mContent.getTranslationY(), contentTranslationY);
             mAnimContent.start();
         }
+        // drag is over, overlay is animated from now on
+        mDragging = false;
+        mSettling = true;
+        startOverlaySnapshot();
+        mSettleTargetOffset = 0;
         mAnimOverlay.setFloatValues(mOverlay.getTranslationY(), 0);
         mAnimOverlay.start();
+        notifyStateChanged();
     }
 
     private void updateViewsState() {
@@ -533,103 +1306,295 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
         if (!hasTargets()) {
             return;
         }
-        mMaxOffset = mOverlay.getHeight() - mOffset;
+        updateMaxOffset();
+        float percent;
         if (mState == STATE_GONE) {
             mContent.setTranslationY(0);
             mOverlay.setTranslationY(mMaxOffset);
-            dispatchDragProgress(1);
+            percent = 1;
         } else {
             mContent.setTranslationY(-mMaxOffset * mParallaxFactor);
             mOverlay.setTranslationY(0);
-            dispatchDragProgress(0);
+            percent = 0;
+        }
+        if (mDragPercent == percent) {
+            // listeners are up to date, but translations could change
+            updateContentClip();
+        } else {
+            dispatchDragProgress(percent);
         }
+        notifyStateChanged();
     }
 
-    private void dispatchDragCurrentProgress() {
-        dispatchDragProgress(mOverlay.getTranslationY() / mMaxOffset);
+    /**
+     * Keep overlay's progress when its height changes, so it does not jump. Running animation is
+     * retargeted to the new position of its target and continues without restarting.
+     */
+    private void remapViewsState() {
+        float progress = mMaxOffset > 0 ? mOverlay.getTranslationY() / mMaxOffset : mDragPercent;
+        updateMaxOffset();
+        if (progress < 0) {
+            progress = mState == STATE_GONE ? 1 : 0;
+        }
+        float overlayTranslationY = progress * mMaxOffset;
+        float contentTranslationY = -(mMaxOffset - overlayTranslationY) * mParallaxFactor;
+        mOverlay.setTranslationY(overlayTranslationY);
+        if (mSettling) {
+            mSettleTargetOffset = mState == STATE_GONE ? mMaxOffset : 0;
+            retargetAnimator(mAnimOverlay, overlayTranslationY, mSettleTargetOffset);
+            float contentTarget = mState == STATE_GONE ? 0 : -mMaxOffset * mParallaxFactor;
+            if (mAnimContent.isRunning()) {
+                retargetAnimator(mAnimContent, contentTranslationY, contentTarget);
+                mContent.setTranslationY(contentTranslationY);
+            } else {
+                // content has already reached its target
+                mContent.setTranslationY(contentTarget);
+            }
+        } else {
+            mContent.setTranslationY(contentTranslationY);
+        }
+        if (mDragPercent == progress) {
+            updateContentClip();
+        } else {
+            dispatchDragProgress(progress);
+        }
+        notifyStateChanged();
     }
 
-    private void dispatchDragProgress(float percent) {
-        if (mDragPercent == percent) {
+    /**
+     * Change end value of the running {@code animator}, keeping its progress, so it continues
+     * from {@code current} value without restarting.
+     */
+    private static void retargetAnimator(ValueAnimator animator, float current, float end) {
+        float fraction = animator.getAnimatedFraction();
+        if (fraction >= 1) {
+            animator.setFloatValues(end, end);
             return;
         }
-        mDragPercent = percent;
-        // if parallax factor is 1 we dont need to clip content as it will be not overlapped by
-        // overlay (content translates the same value as overlay)
-        if (mParallaxFactor != 1 && mClipContent) {
-            int overlayTranslationY = (int) mOverlay.getTranslationY();
-            int contentTranslationY = (int) mContent.getTranslationY();
-            int bottom = overlayTranslationY - contentTranslationY;
-            int visibility = mContent.getVisibility();
-            if (bottom > 0) {
-                if (visibility != VISIBLE) {
-                    mContent.setVisibility(VISIBLE);
-                }
-                mContentClip.set(0, 0, mContent.getWidth(), bottom);
-                ViewCompat.setClipBounds(mContent, mContentClip);
-            } else {
-                if (visibility != INVISIBLE) {
-                    mContent.setVisibility(INVISIBLE);
-                }
-            }
+        // start value, which gives the current value at the current fraction
+        float start = (current - fraction * end) / (1 - fraction);
+        animator.setFloatValues(start, end);
+    }
+
+    /**
+     * Publish current state for {@link #getSlidingState(SlidingState)} and update visibility of
+     * the views.
+     */
+    private void notifyStateChanged() {
+        if (!isViewsLaidOut()) {
+            // geometry is not known yet, visibility would be evaluated against zero sizes
+            return;
         }
-        // notify listeners
-        for (OnDragProgressListener listener : mDragProgressListeners) {
-            listener.onDragProgress(percent);
+        float offset = mOverlay.getTranslationY();
+        mStatePublisher.publish(mDragPercent, offset, mSettling ? mSettleTargetOffset : offset,
+                mState, mDragging, mSettling);
+        if (!mDragging && !mSettling) {
+            stopOverlaySnapshot();
         }
+        updateVisibilityState();
     }
 
-    // OnGestureListener
+    private void registerOverlaySnapshot() {
+        if (mOverlaySnapshot == null) {
+            mOverlaySnapshot = new OverlaySnapshot();
+        }
+        if (!mOverlaySnapshotRegistered) {
+            mOverlaySnapshotRegistered = true;
+            getContext().getApplicationContext().registerComponentCallbacks(mOverlaySnapshot);
+        }
+    }
 
-    @Override
-    public boolean onDown(MotionEvent e) {
-        return false;
+    private void unregisterOverlaySnapshot() {
+        if (mOverlaySnapshotRegistered) {
+            mOverlaySnapshotRegistered = false;
+            getContext().getApplicationContext().unregisterComponentCallbacks(mOverlaySnapshot);
+        }
     }
 
-    @Override
-    public void onShowPress(MotionEvent e) {
+    /**
+     * Capture the overlay and draw the snapshot instead of it, if snapshot mode is enabled.
+     */
+    private void startOverlaySnapshot() {
+        if (mOverlaySnapshot == null || mOverlaySnapshot.isActive() || !hasTargets()) {
+            return;
+        }
+        if (mOverlaySnapshot.capture(mOverlay)) {
+            invalidate();
+        }
     }
 
-    @Override
-    public boolean onSingleTapUp(MotionEvent e) {
-        return false;
+    /**
+     * Swap back to the live overlay.
+     */
+    private void stopOverlaySnapshot() {
+        if (mOverlaySnapshot != null && mOverlaySnapshot.isActive()) {
+            mOverlaySnapshot.deactivate();
+            invalidate();
+        }
     }
 
-    @Override
-    public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-        if (!hasTargets()) {
-            ensureTargets();
+    /**
+     * Notify {@link OnVisibilityChangeListener}s. Views are reported visible as soon as any
+     * part of them is visible, but hidden only when they are fully covered and not moving, so
+     * callbacks do not flap during drags and animations.
+     */
+    private void updateVisibilityState() {
+        boolean atRest = !mDragging && !mSettling;
+        float overlayY = mOverlay.getY();
+        boolean contentObscured = overlayY <= mContent.getY() &&
+                mOverlay.getLeft() <= mContent.getLeft() &&
+                mOverlay.getRight() >= mContent.getRight();
+        boolean overlayHidden = overlayY >= getHeight();
+        if (mContentObscured != contentObscured && (!contentObscured || atRest)) {
+            mContentObscured = contentObscured;
+            for (int i = 0, size = mVisibilityChangeListeners.size(); i < size; i++) {
+                mVisibilityChangeListeners.get(i).onContentVisibilityChanged(!contentObscured);
+            }
         }
-        if (!mDragging && hasTargets()) {
-            startDrag();
+        if (mOverlayHidden != overlayHidden && (!overlayHidden || atRest)) {
+            mOverlayHidden = overlayHidden;
+            for (int i = 0, size = mVisibilityChangeListeners.size(); i < size; i++) {
+                mVisibilityChangeListeners.get(i).onOverlayVisibilityChanged(!overlayHidden);
+            }
         }
-        if (mDragging) {
-            onDrag(distanceY);
-            return true;
+    }
+
+    /**
+     * Compute overlay travel distance from its actual height.
+     */
+    private void updateMaxOffset() {
+        mMaxOffset = Math.max(0, mOverlay.getHeight() - mOffset);
+    }
+
+    private void dispatchDragCurrentProgress() {
+        if (mMaxOffset > 0) {
+            dispatchDragProgress(mOverlay.getTranslationY() / mMaxOffset);
+        } else {
+            dispatchDragProgress(mState == STATE_GONE ? 1 : 0);
         }
-        return false;
     }
 
-    @Override
-    public void onLongPress(MotionEvent e) {
+    private void dispatchDragProgress(float percent) {
+        if (mDragPercent == percent) {
+            return;
+        }
+        mDragPercent = percent;
+        updateContentClip();
+        if (mOverlaySnapshot != null && mOverlaySnapshot.isActive()) {
+            // snapshot is drawn by this view, so it must be redrawn when overlay moves
+            invalidate();
+        }
+        // notify listeners
+        for (int i = 0, size = mDragProgressListeners.size(); i < size; i++) {
+            mDragProgressListeners.get(i).onDragProgress(percent);
+        }
+        for (int i = 0, size = mAsyncDragProgressDispatchers.size(); i < size; i++) {
+            mAsyncDragProgressDispatchers.get(i).dispatch(percent);
+        }
+        notifyStateChanged();
     }
 
-    @Override
-    public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
-        if (Math.abs(velocityX) < Math.abs(velocityY)) {
-            if (velocityY < 0) {
-                showOverlay();
-            } else {
-                hideOverlay();
+    private void updateContentClip() {
+        // if parallax factor is 1 we dont need to clip content as it will be not overlapped by
+        // overlay (content translates the same value as overlay)
+        // overlay narrower than content does not hide it either
+        if (mParallaxFactor == 1 || !mClipContent || mOverlay.getLeft() > mContent.getLeft() ||
+                mOverlay.getRight() < mContent.getRight()) {
+            if (mContentClipped) {
+                mContentClipped = false;
+                ViewCompat.setClipBounds(mContent, null);
+                mContent.setVisibility(VISIBLE);
+            }
+            return;
+        }
+        mContentClipped = true;
+        int bottom = (int) (mOverlay.getY() - mContent.getY());
+        int visibility = mContent.getVisibility();
+        if (bottom > 0) {
+            if (visibility != VISIBLE) {
+                mContent.setVisibility(VISIBLE);
+            }
+            mContentClip.set(0, 0, mContent.getWidth(), bottom);
+            ViewCompat.setClipBounds(mContent, mContentClip);
+        } else {
+            if (visibility != INVISIBLE) {
+                mContent.setVisibility(INVISIBLE);
             }
         }
-        return true;
     }
 
     ///////////////////////////////////////////////////////////////////////////
     // Interfaces, listeners, etc.
     ///////////////////////////////////////////////////////////////////////////
 
+    private class OverlayAnimatorListener extends AnimatorListenerAdapter
+            implements ValueAnimator.AnimatorUpdateListener {
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            dispatchDragCurrentProgress();
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (mSettleInterrupted) {
+                return;
+            }
+            mDragging = false;
+            mSettling = false;
+            dispatchDragCurrentProgress();
+            notifyStateChanged();
+        }
+    }
+
+    private class DragListener implements DragDetector.OnDragListener {
+        @Override
+        public boolean onDragStart(float x, float y, float dy) {
+            if (!mDragging) {
+                if (!canMoveOverlay(dy) || canConsumeDrag(SlidingLayout.this, false, x, y, dy)) {
+                    // overlay is already at its edge or the gesture belongs to a child
+                    return false;
+                }
+                startDrag();
+            }
+            if (mDragging && getParent() != null) {
+                getParent().requestDisallowInterceptTouchEvent(true);
+            }
+            return mDragging;
+        }
+
+        @Override
+        public void onDragMove(float dy) {
+            if (mDragging) {
+                onDrag(dy);
+            }
+        }
+
+        @Override
+        public void onDragEnd(float velocityY) {
+            if (velocityY < 0) {
+                showOverlay();
+            } else if (velocityY > 0) {
+                hideOverlay();
+            } else {
+                releaseDrag();
+            }
+        }
+    }
+
+    /**
+     * Rounds top corners of the overlay. Outline is extended below the bottom edge by the radius,
+     * so bottom corners are not rounded.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private class OverlayOutlineProvider extends ViewOutlineProvider {
+        @Override
+        public void getOutline(View view, Outline outline) {
+            int radius = (int) Math.ceil(mOverlayCornerRadius);
+            outline.setRoundRect(0, 0, view.getWidth(), view.getHeight() + radius,
+                    mOverlayCornerRadius);
+        }
+    }
+
     private static class SavedState extends BaseSavedState {
         int state;
 
@@ -665,4 +1630,27 @@ public class SlidingLayout extends NestedScrollingViewGroup implements GestureDe
         void onDragProgress(float percent);
     }
 
+    public interface OnVisibilityChangeListener {
+        /**
+         * @param visible {@code true}, if any part of the content is visible, {@code false},
+         *                if it is fully obscured by the overlay
+         */
+        void onContentVisibilityChanged(boolean visible);
+
+        /**
+         * @param visible {@code true}, if any part of the overlay is visible, {@code false},
+         *                if it is fully hidden
+         */
+        void onOverlayVisibilityChanged(boolean visible);
+    }
+
+    public interface OnOverlayWarmUpListener {
+        /**
+         * Called on the main thread idle before a likely drag.
+         *
+         * @param overlay overlay view
+         */
+        void onOverlayWarmUp(View overlay);
+    }
+
 }
@@ -0,0 +1,67 @@
+package com.italankin.slidinglayout;
+
+/**
+ * Snapshot of {@link SlidingLayout} state, which can be obtained from any thread with
+ * {@link SlidingLayout#getSlidingState(SlidingState)}. Instances can be reused between calls.
+ */
+public final class SlidingState {
+
+    float progress = -1;
+    float offset;
+    float targetOffset;
+    int state = SlidingLayout.STATE_GONE;
+    boolean dragging;
+    boolean settling;
+    long sequence;
+
+    /**
+     * @return overlay progress, where {@code 0} is fully visible and {@code 1} is fully hidden,
+     * or {@code -1}, if layout was not laid out yet
+     */
+    public float getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return overlay's vertical offset from its visible position, in pixels
+     */
+    public float getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return offset the overlay is settling to, or current offset, if it is not settling
+     */
+    public float getTargetOffset() {
+        return targetOffset;
+    }
+
+    /**
+     * @return one of {@link SlidingLayout#STATE_GONE} or {@link SlidingLayout#STATE_VISIBLE}
+     */
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * @return {@code true}, if the overlay is being dragged
+     */
+    public boolean isDragging() {
+        return dragging;
+    }
+
+    /**
+     * @return {@code true}, if the overlay is animating to its state
+     */
+    public boolean isSettling() {
+        return settling;
+    }
+
+    /**
+     * @return number of state changes published so far, values with equal sequence are identical
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+}
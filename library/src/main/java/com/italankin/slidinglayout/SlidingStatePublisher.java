@@ -0,0 +1,70 @@
+package com.italankin.slidinglayout;
+
+/**
+ * Publishes {@link SlidingState} from the main thread to any number of reader threads using a
+ * sequence lock: the sequence is odd while the write is in progress and readers retry until they
+ * observe the same even sequence before and after reading the values. All fields are volatile, so
+ * reads are not reordered across sequence checks. Neither readers nor the writer allocate or lock.
+ */
+class SlidingStatePublisher {
+
+    private static final int FLAG_DRAGGING = 1;
+    private static final int FLAG_SETTLING = 1 << 1;
+
+    private volatile long mSequence = 0;
+    private volatile float mProgress = -1;
+    private volatile float mOffset;
+    private volatile float mTargetOffset;
+    private volatile int mState = SlidingLayout.STATE_GONE;
+    private volatile int mFlags;
+
+    /**
+     * Publish new values. Must be called from the single writer thread.
+     */
+    void publish(float progress, float offset, float targetOffset, int state, boolean dragging,
+            boolean settling) {
+        int flags = (dragging ? FLAG_DRAGGING : 0) | (settling ? FLAG_SETTLING : 0);
+        if (mProgress == progress && mOffset == offset && mTargetOffset == targetOffset &&
+                mState == state && mFlags == flags) {
+            return;
+        }
+        long sequence = mSequence;
+        mSequence = sequence + 1;
+        mProgress = progress;
+        mOffset = offset;
+        mTargetOffset = targetOffset;
+        mState = state;
+        mFlags = flags;
+        mSequence = sequence + 2;
+    }
+
+    /**
+     * Read consistent values into {@code out}. Can be called from any thread.
+     */
+    void read(SlidingState out) {
+        while (true) {
+            long sequence = mSequence;
+            if ((sequence & 1) != 0) {
+                // write is in progress
+                Thread.yield();
+                continue;
+            }
+            float progress = mProgress;
+            float offset = mOffset;
+            float targetOffset = mTargetOffset;
+            int state = mState;
+            int flags = mFlags;
+            if (mSequence == sequence) {
+                out.progress = progress;
+                out.offset = offset;
+                out.targetOffset = targetOffset;
+                out.state = state;
+                out.dragging = (flags & FLAG_DRAGGING) != 0;
+                out.settling = (flags & FLAG_SETTLING) != 0;
+                out.sequence = sequence >> 1;
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.italankin.slidinglayout;
+
+import android.content.Context;
+import android.support.v4.view.ViewCompat;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays nested scroll callbacks of a scrolling target placed inside the overlay of
+ * {@code inner} layout, which is itself the overlay of {@code outer} layout, and touch events
+ * dispatched to {@code outer}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class NestedSlidingLayoutTest {
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 800;
+    private static final int OUTER_OVERLAY_HEIGHT = 600;
+    private static final int INNER_OVERLAY_HEIGHT = 300;
+    private static final float TOUCH_X = WIDTH / 2;
+    /**
+     * Inside of the inner overlay, when both overlays are visible
+     */
+    private static final float TOUCH_Y = HEIGHT - INNER_OVERLAY_HEIGHT / 2;
+    private static final int TOUCH_STEP = 50;
+    private static final int FRAME_MILLIS = 16;
+
+    private SlidingLayout outer;
+    private SlidingLayout inner;
+    private View target;
+    private long downTime;
+    private long eventTime;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+
+        inner = new SlidingLayout(context);
+        inner.addView(new View(context));
+        target = new View(context);
+        inner.addView(target, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, INNER_OVERLAY_HEIGHT));
+
+        outer = new SlidingLayout(context);
+        outer.addView(new View(context));
+        outer.addView(inner, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, OUTER_OVERLAY_HEIGHT));
+
+        outer.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        outer.layout(0, 0, WIDTH, HEIGHT);
+
+        // layouts are not attached, so state changes are applied without animations
+        outer.setOverlayState(SlidingLayout.STATE_VISIBLE, false);
+        inner.setOverlayState(SlidingLayout.STATE_VISIBLE, false);
+    }
+
+    @Test
+    public void innerLayoutStartsDragAndOwnsGesture() {
+        long outerSequence = sequenceOf(outer);
+
+        startScroll();
+        int[] consumed = preScroll(0, -10);
+        assertEquals(0, consumed[1]);
+        // target is at its top edge and cannot scroll
+        scroll(0, -10);
+        assertTrue(stateOf(inner).isDragging());
+        assertEquals(10, target.getTranslationY(), 0);
+
+        for (int i = 0; i < 5; i++) {
+            consumed = preScroll(0, -20);
+            assertEquals(-20, consumed[1]);
+        }
+        assertEquals(110, target.getTranslationY(), 0);
+        assertEquals(0, inner.getTranslationY(), 0);
+        assertEquals(outerSequence, sequenceOf(outer));
+
+        stopScroll();
+        assertFalse(stateOf(inner).isDragging());
+        assertEquals(SlidingLayout.STATE_GONE, stateOf(inner).getState());
+        assertEquals(INNER_OVERLAY_HEIGHT, target.getTranslationY(), 0);
+        // outer layout did not receive deltas and did not settle
+        assertEquals(outerSequence, sequenceOf(outer));
+        assertTrue(outer.isOverlayShowing());
+        assertEquals(0, inner.getTranslationY(), 0);
+    }
+
+    @Test
+    public void diagonalPreScrollDuringDragIsConsumedVertically() {
+        startScroll();
+        preScroll(0, -10);
+        scroll(0, -10);
+        assertTrue(stateOf(inner).isDragging());
+
+        int[] consumed = preScroll(15, -20);
+        assertEquals(0, consumed[0]);
+        assertEquals(-20, consumed[1]);
+        assertEquals(30, target.getTranslationY(), 0);
+        assertEquals(0, inner.getTranslationY(), 0);
+    }
+
+    @Test
+    public void leftoverIsPassedToParentWhenOverlayCannotMove() {
+        inner.setOverlayState(SlidingLayout.STATE_GONE, false);
+        assertEquals(INNER_OVERLAY_HEIGHT, target.getTranslationY(), 0);
+
+        startScroll();
+        preScroll(0, -10);
+        scroll(0, -10);
+        assertFalse(stateOf(inner).isDragging());
+        assertTrue(stateOf(outer).isDragging());
+        assertEquals(10, inner.getTranslationY(), 0);
+
+        int[] consumed = preScroll(0, -20);
+        assertEquals(-20, consumed[1]);
+        assertEquals(30, inner.getTranslationY(), 0);
+        assertEquals(INNER_OVERLAY_HEIGHT, target.getTranslationY(), 0);
+        assertFalse(stateOf(inner).isDragging());
+    }
+
+    @Test
+    public void flingVelocityIsPassedToDraggingParent() {
+        inner.setOverlayState(SlidingLayout.STATE_GONE, false);
+        long innerSequence = sequenceOf(inner);
+
+        startScroll();
+        preScroll(0, -10);
+        scroll(0, -10);
+        assertTrue(stateOf(outer).isDragging());
+
+        // fling upwards, outer overlay must return to the visible state
+        assertTrue(inner.onNestedPreFling(target, 0, 5000));
+        stopScroll();
+
+        assertFalse(stateOf(outer).isDragging());
+        assertTrue(outer.isOverlayShowing());
+        assertEquals(0, inner.getTranslationY(), 0);
+        // inner layout was not dragging and did not settle
+        assertEquals(innerSequence, sequenceOf(inner));
+        assertFalse(inner.isOverlayShowing());
+    }
+
+    @Test
+    public void layoutWhichCannotMoveDoesNotStartDrag() {
+        outer.setOverlayState(SlidingLayout.STATE_GONE, false);
+        inner.setOverlayState(SlidingLayout.STATE_GONE, false);
+
+        startScroll();
+        preScroll(0, -10);
+        scroll(0, -10);
+        assertFalse(stateOf(inner).isDragging());
+        assertFalse(stateOf(outer).isDragging());
+        stopScroll();
+
+        assertFalse(inner.isOverlayShowing());
+        assertFalse(outer.isOverlayShowing());
+    }
+
+    @Test
+    public void innerLayoutConsumesTouchDragFirst() {
+        long outerSequence = sequenceOf(outer);
+
+        touch(MotionEvent.ACTION_DOWN, TOUCH_Y);
+        touch(MotionEvent.ACTION_MOVE, TOUCH_Y + TOUCH_STEP);
+        touch(MotionEvent.ACTION_MOVE, TOUCH_Y + TOUCH_STEP * 2);
+        assertTrue(stateOf(inner).isDragging());
+        assertFalse(stateOf(outer).isDragging());
+        assertTrue(target.getTranslationY() > 0);
+        assertEquals(0, inner.getTranslationY(), 0);
+
+        touch(MotionEvent.ACTION_UP, TOUCH_Y + TOUCH_STEP * 2);
+        assertFalse(stateOf(inner).isDragging());
+        assertFalse(inner.isOverlayShowing());
+        assertEquals(outerSequence, sequenceOf(outer));
+        assertTrue(outer.isOverlayShowing());
+    }
+
+    @Test
+    public void outerLayoutDragsWhenInnerOverlayCannotMove() {
+        long innerSequence = sequenceOf(inner);
+
+        // upwards drag, inner overlay is fully shown and cannot move
+        touch(MotionEvent.ACTION_DOWN, TOUCH_Y);
+        touch(MotionEvent.ACTION_MOVE, TOUCH_Y - TOUCH_STEP);
+        assertFalse(stateOf(inner).isDragging());
+        assertFalse(stateOf(outer).isDragging());
+        touch(MotionEvent.ACTION_UP, TOUCH_Y - TOUCH_STEP);
+
+        // outer overlay is also fully shown, so nothing is dragged
+        assertEquals(innerSequence, sequenceOf(inner));
+        assertEquals(0, target.getTranslationY(), 0);
+        assertEquals(0, inner.getTranslationY(), 0);
+
+        // downwards drag outside of the hidden inner overlay
+        inner.setOverlayState(SlidingLayout.STATE_GONE, false);
+        innerSequence = sequenceOf(inner);
+        touch(MotionEvent.ACTION_DOWN, TOUCH_Y);
+        touch(MotionEvent.ACTION_MOVE, TOUCH_Y + TOUCH_STEP);
+        touch(MotionEvent.ACTION_MOVE, TOUCH_Y + TOUCH_STEP * 2);
+        assertTrue(stateOf(outer).isDragging());
+        assertFalse(stateOf(inner).isDragging());
+        assertTrue(inner.getTranslationY() > 0);
+
+        touch(MotionEvent.ACTION_UP, TOUCH_Y + TOUCH_STEP * 2);
+        assertFalse(stateOf(outer).isDragging());
+        assertEquals(innerSequence, sequenceOf(inner));
+        assertEquals(INNER_OVERLAY_HEIGHT, target.getTranslationY(), 0);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Target callbacks
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void startScroll() {
+        assertTrue(inner.onStartNestedScroll(target, target, ViewCompat.SCROLL_AXIS_VERTICAL));
+        inner.onNestedScrollAccepted(target, target, ViewCompat.SCROLL_AXIS_VERTICAL);
+    }
+
+    private int[] preScroll(int dx, int dy) {
+        int[] consumed = new int[2];
+        inner.onNestedPreScroll(target, dx, dy, consumed);
+        return consumed;
+    }
+
+    private void scroll(int dyConsumed, int dyUnconsumed) {
+        inner.onNestedScroll(target, 0, dyConsumed, 0, dyUnconsumed);
+    }
+
+    private void stopScroll() {
+        inner.onStopNestedScroll(target);
+    }
+
+    /**
+     * Dispatch touch event to {@code outer} layout, as its window does.
+     */
+    private void touch(int action, float y) {
+        if (action == MotionEvent.ACTION_DOWN) {
+            downTime = eventTime;
+        }
+        eventTime += FRAME_MILLIS;
+        MotionEvent event = MotionEvent.obtain(downTime, eventTime, action, TOUCH_X, y, 0);
+        outer.dispatchTouchEvent(event);
+        event.recycle();
+    }
+
+    private static SlidingState stateOf(SlidingLayout layout) {
+        return layout.getSlidingState(new SlidingState());
+    }
+
+    private static long sequenceOf(SlidingLayout layout) {
+        return stateOf(layout).getSequence();
+    }
+
+}
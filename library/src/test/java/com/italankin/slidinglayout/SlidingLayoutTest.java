@@ -0,0 +1,134 @@
+package com.italankin.slidinglayout;
+
+import android.app.Activity;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a layout attached to a visible window, so state changes are animated.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SlidingLayoutTest {
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 800;
+    private static final int OVERLAY_HEIGHT = 300;
+    private static final int FRAME_MILLIS = 16;
+    private static final int MAX_FRAMES = 100;
+
+    private SlidingLayout layout;
+    private View target;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        layout = new SlidingLayout(activity);
+        layout.addView(new View(activity));
+        target = new View(activity);
+        layout.addView(target, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, OVERLAY_HEIGHT));
+        activity.setContentView(layout);
+
+        layout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        layout.layout(0, 0, WIDTH, HEIGHT);
+        layout.setOverlayState(SlidingLayout.STATE_VISIBLE, false);
+    }
+
+    @Test
+    public void settleAfterDragIsNotReportedAsDrag() {
+        assertTrue(layout.onStartNestedScroll(target, target, ViewCompat.SCROLL_AXIS_VERTICAL));
+        layout.onNestedScrollAccepted(target, target, ViewCompat.SCROLL_AXIS_VERTICAL);
+        layout.onNestedScroll(target, 0, 0, 0, -100);
+        assertTrue(stateOf(layout).isDragging());
+
+        layout.onStopNestedScroll(target);
+        SlidingState state = stateOf(layout);
+        assertTrue(state.isSettling());
+        assertFalse(state.isDragging());
+
+        // deltas are not consumed by the settling layout
+        int[] consumed = new int[2];
+        layout.onNestedPreScroll(target, 0, -10, consumed);
+        assertEquals(0, consumed[1]);
+
+        finishSettle();
+        state = stateOf(layout);
+        assertFalse(state.isSettling());
+        assertFalse(state.isDragging());
+        assertEquals(SlidingLayout.STATE_GONE, state.getState());
+        assertEquals(OVERLAY_HEIGHT, target.getTranslationY(), 0);
+    }
+
+    @Test
+    public void stateChangeReversesRunningSettle() {
+        layout.setOverlayState(SlidingLayout.STATE_GONE, false);
+        layout.setOverlayState(SlidingLayout.STATE_VISIBLE, true);
+        assertTrue(stateOf(layout).isSettling());
+        Robolectric.getForegroundThreadScheduler().advanceBy(FRAME_MILLIS);
+
+        layout.setOverlayState(SlidingLayout.STATE_GONE, true);
+        assertTrue(stateOf(layout).isSettling());
+        assertEquals(SlidingLayout.STATE_GONE, stateOf(layout).getState());
+
+        finishSettle();
+        assertFalse(layout.isOverlayShowing());
+        assertEquals(OVERLAY_HEIGHT, target.getTranslationY(), 0);
+    }
+
+    @Test
+    public void batchedStateChangeReversesRunningSettle() {
+        layout.setOverlayState(SlidingLayout.STATE_GONE, false);
+        layout.setOverlayState(SlidingLayout.STATE_VISIBLE, true);
+        Robolectric.getForegroundThreadScheduler().advanceBy(FRAME_MILLIS);
+
+        layout.beginBatchEdit();
+        layout.setOverlayState(SlidingLayout.STATE_GONE, true);
+        layout.endBatchEdit();
+        assertTrue(stateOf(layout).isSettling());
+
+        finishSettle();
+        assertFalse(layout.isOverlayShowing());
+        assertEquals(OVERLAY_HEIGHT, target.getTranslationY(), 0);
+    }
+
+    @Test
+    public void batchWithoutStateChangeKeepsSettle() {
+        layout.setOverlayState(SlidingLayout.STATE_GONE, false);
+        layout.setOverlayState(SlidingLayout.STATE_VISIBLE, true);
+
+        layout.beginBatchEdit();
+        layout.setClipContent(false);
+        layout.endBatchEdit();
+        assertTrue(stateOf(layout).isSettling());
+
+        finishSettle();
+        assertTrue(layout.isOverlayShowing());
+        assertEquals(0, target.getTranslationY(), 0);
+    }
+
+    private void finishSettle() {
+        for (int i = 0; i < MAX_FRAMES && stateOf(layout).isSettling(); i++) {
+            Robolectric.getForegroundThreadScheduler().advanceBy(FRAME_MILLIS);
+        }
+        assertFalse("settle did not finish", stateOf(layout).isSettling());
+    }
+
+    private static SlidingState stateOf(SlidingLayout layout) {
+        return layout.getSlidingState(new SlidingState());
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.italankin.slidinglayout;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SlidingStatePublisherTest {
+
+    private static final int WRITES = 3000000;
+    private static final int READERS = 4;
+    private static final int STEPS = 1000;
+    private static final float MAX_OFFSET = 1234f;
+
+    @Test
+    public void initialState() {
+        SlidingState state = new SlidingState();
+        new SlidingStatePublisher().read(state);
+        assertEquals(0, state.getSequence());
+        assertEquals(-1, state.getProgress(), 0);
+        assertEquals(SlidingLayout.STATE_GONE, state.getState());
+    }
+
+    @Test
+    public void sameValuesAreNotPublished() {
+        SlidingStatePublisher publisher = new SlidingStatePublisher();
+        SlidingState state = new SlidingState();
+        publisher.publish(0.5f, 10, 20, SlidingLayout.STATE_VISIBLE, true, false);
+        publisher.publish(0.5f, 10, 20, SlidingLayout.STATE_VISIBLE, true, false);
+        publisher.read(state);
+        assertEquals(1, state.getSequence());
+        publisher.publish(0.5f, 10, 20, SlidingLayout.STATE_VISIBLE, false, true);
+        publisher.read(state);
+        assertEquals(2, state.getSequence());
+        assertFalse(state.isDragging());
+        assertTrue(state.isSettling());
+    }
+
+    @Test
+    public void readersNeverSeeTornState() throws InterruptedException {
+        final SlidingStatePublisher publisher = new SlidingStatePublisher();
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<String> error = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] readers = new Thread[READERS];
+        for (int i = 0; i < READERS; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SlidingState state = new SlidingState();
+                    long lastSequence = 0;
+                    awaitQuietly(start);
+                    while (!done.get()) {
+                        publisher.read(state);
+                        if (state.getSequence() < lastSequence) {
+                            error.compareAndSet(null, "sequence went backwards: " + lastSequence +
+                                    " -> " + state.getSequence());
+                            return;
+                        }
+                        lastSequence = state.getSequence();
+                        if (lastSequence > 0) {
+                            String message = checkConsistent(state);
+                            if (message != null) {
+                                error.compareAndSet(null, message);
+                                return;
+                            }
+                        }
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        start.countDown();
+        for (int i = 1; i <= WRITES; i++) {
+            publishStep(publisher, i % (STEPS + 1));
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(error.get(), error.get());
+        SlidingState state = new SlidingState();
+        publisher.read(state);
+        assertEquals(WRITES, state.getSequence());
+        assertNull(checkConsistent(state));
+    }
+
+    /**
+     * Publish values derived from {@code step}, each step differs from the previous one.
+     */
+    private static void publishStep(SlidingStatePublisher publisher, int step) {
+        float progress = step / (float) STEPS;
+        float offset = progress * MAX_OFFSET;
+        publisher.publish(progress, offset, MAX_OFFSET - offset,
+                (step & 1) != 0 ? SlidingLayout.STATE_VISIBLE : SlidingLayout.STATE_GONE,
+                (step & 2) != 0, (step & 4) != 0);
+    }
+
+    /**
+     * @return description of the inconsistency, or {@code null}, if all values belong to the
+     * same step
+     */
+    private static String checkConsistent(SlidingState state) {
+        int step = Math.round(state.getProgress() * STEPS);
+        float progress = step / (float) STEPS;
+        float offset = progress * MAX_OFFSET;
+        if (state.getProgress() != progress ||
+                state.getOffset() != offset ||
+                state.getTargetOffset() != MAX_OFFSET - offset ||
+                state.getState() != ((step & 1) != 0 ? SlidingLayout.STATE_VISIBLE : SlidingLayout.STATE_GONE) ||
+                state.isDragging() != ((step & 2) != 0) ||
+                state.isSettling() != ((step & 4) != 0)) {
+            return "torn state at sequence " + state.getSequence() + ": progress=" +
+                    state.getProgress() + ", offset=" + state.getOffset() + ", targetOffset=" +
+                    state.getTargetOffset() + ", state=" + state.getState() + ", dragging=" +
+                    state.isDragging() + ", settling=" + state.isSettling();
+        }
+        return null;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}